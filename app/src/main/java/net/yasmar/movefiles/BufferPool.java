@@ -0,0 +1,109 @@
+package net.yasmar.movefiles;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Timer;
+import java.util.TimerTask;
+
+// A small pool of 1M direct buffers shared by the copy and log reading code.
+// Buffers are only allocated when needed, and the total is bounded: once they're
+// all leased, callers wait for one to be released. Once the pool has been idle
+// for a few seconds, only one buffer is kept.
+public class BufferPool {
+
+    static final int BUFFER_SIZE = 1000000;
+
+    // enough for the worker, the service and the UI, or one per core for the daemon
+    static final int MAX_BUFFERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    static final int MAX_IDLE = 1;
+    static final long TRIM_DELAY = 5000;
+
+    private BufferPool() {
+    }
+
+    private static BufferPool instance;
+    static synchronized BufferPool getInstance() {
+        if (instance == null) {
+            instance = new BufferPool();
+        }
+        return instance;
+    }
+
+    final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    int allocated = 0;
+    long leases = 0;
+    Timer timer;
+    boolean trimScheduled = false;
+
+    synchronized ByteBuffer lease() throws InterruptedException {
+        while (free.isEmpty() && allocated >= MAX_BUFFERS) {
+            wait();
+        }
+        return take();
+    }
+
+    // For the main thread, which mustn't block for long.
+    // Returns null if no buffer became available within timeout (milliseconds).
+    synchronized ByteBuffer tryLease(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (free.isEmpty() && allocated >= MAX_BUFFERS) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return null;
+            }
+            wait(left);
+        }
+        return take();
+    }
+
+    private ByteBuffer take() {
+        leases++;
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            allocated++;
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    synchronized void release(ByteBuffer buffer) {
+        free.push(buffer);
+        notify();
+        if (free.size() > MAX_IDLE && !trimScheduled) {
+            scheduleTrim();
+        }
+    }
+
+    // Extra buffers are only dropped once the pool has been idle for a while, so a burst
+    // of small files reuses them rather than allocating a new 1M buffer for each file.
+    private void scheduleTrim() {
+        if (timer == null) {
+            timer = new Timer("BufferPool", true);
+        }
+        trimScheduled = true;
+        long seen = leases;
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                trim(seen);
+            }
+        }, TRIM_DELAY);
+    }
+
+    synchronized void trim(long seen) {
+        trimScheduled = false;
+        if (leases != seen || free.size() != allocated) {
+            // still busy, check again later
+            if (allocated > MAX_IDLE) {
+                scheduleTrim();
+            }
+            return;
+        }
+        while (free.size() > MAX_IDLE) {
+            free.pop();
+            allocated--;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.yasmar.movefiles;
+
+import android.os.FileObserver;
+
+import java.io.File;
+
+import androidx.annotation.Nullable;
+
+public class FileObserverWatcher
+        implements FolderWatcher {
+
+    static final int MASK = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.MOVE_SELF | FileObserver.CREATE;
+
+    FileObserver fileObserver;
+
+    FileObserverWatcher(File folder, Callback callback) {
+        fileObserver = new FileObserver(folder, MASK) {
+            @Override
+            public void onEvent(int event, @Nullable String filename) {
+                callback.onEvent(filename);
+            }
+        };
+    }
+
+    @Override
+    public void startWatching() {
+        fileObserver.startWatching();
+    }
+
+    @Override
+    public void stopWatching() {
+        fileObserver.stopWatching();
+    }
+}
@@ -0,0 +1,15 @@
+package net.yasmar.movefiles;
+
+// Watches a folder and reports the names of files that were created or written.
+// MainService uses the FileObserver backend, while the WatchService backend
+// lets the same scheduling and moving logic run on a plain JVM.
+public interface FolderWatcher {
+
+    interface Callback {
+        void onEvent(String filename);
+    }
+
+    void startWatching();
+
+    void stopWatching();
+}
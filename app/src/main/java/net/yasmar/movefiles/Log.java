@@ -15,6 +15,19 @@ public class Log {
     public static File logFile;
     public static boolean LOG_TO_FILE = false;
 
+    // android.util.Log isn't usable when the move engine runs on a plain JVM
+    static final boolean ANDROID = "Dalvik".equals(System.getProperty("java.vm.name"));
+
+    // Only show warnings on the console (the load test would otherwise measure its own logging)
+    static boolean QUIET = false;
+
+    static void logToConsole(String level, String tag, String msg) {
+        if (QUIET && !level.equals("W")) {
+            return;
+        }
+        System.err.println(level + "/" + tag + ": " + msg);
+    }
+
     static void init(Context context) {
         File externalFiles = context.getExternalFilesDir(null);
         if (externalFiles == null) {
@@ -52,28 +65,45 @@ public class Log {
     }
 
     public static void v(String tag, String msg) {
-        android.util.Log.v(tag, msg);
+        if (ANDROID) {
+            android.util.Log.v(tag, msg);
+        } else {
+            logToConsole("V", tag, msg);
+        }
         if (LOG_TO_FILE) {
             logToFile(msg);
         }
     }
 
     public static void i(String tag, String msg) {
-        android.util.Log.i(tag, msg);
+        if (ANDROID) {
+            android.util.Log.i(tag, msg);
+        } else {
+            logToConsole("I", tag, msg);
+        }
         if (LOG_TO_FILE) {
             logToFile(msg);
         }
     }
 
     public static void w(String tag, String msg) {
-        android.util.Log.w(tag, msg);
+        if (ANDROID) {
+            android.util.Log.w(tag, msg);
+        } else {
+            logToConsole("W", tag, msg);
+        }
         if (LOG_TO_FILE) {
             logToFile(msg);
         }
     }
 
     public static void w(String tag, String msg, Throwable t) {
-        android.util.Log.w(tag, msg, t);
+        if (ANDROID) {
+            android.util.Log.w(tag, msg, t);
+        } else {
+            logToConsole("W", tag, msg);
+            t.printStackTrace();
+        }
         if (LOG_TO_FILE) {
             logToFile(msg);
             logToFile(t);
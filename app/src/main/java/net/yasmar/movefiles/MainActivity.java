@@ -21,14 +21,21 @@ import android.widget.TextView;
 
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.work.Data;
 import androidx.work.ExistingPeriodicWorkPolicy;
 import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkInfo;
 import androidx.work.WorkManager;
 
 import static android.provider.Settings.ACTION_MANAGE_ALL_FILES_ACCESS_PERMISSION;
@@ -46,7 +53,9 @@ public class MainActivity extends Activity {
     Button source;
     Button destination;
     Button enable;
+    TextView progress;
     Button service;
+    Switch compress;
     Switch logging;
     TextView logLabel;
     TextView logView;
@@ -60,6 +69,8 @@ public class MainActivity extends Activity {
     WorkManager workManager;
     MoveFilesImpl impl;
     FileObserver fileObserver;
+    LiveData<List<WorkInfo>> workInfos;
+    final Observer<List<WorkInfo>> workObserver = this::showProgress;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -111,10 +122,19 @@ public class MainActivity extends Activity {
         enable.setText(workEnabled ? R.string.disable : R.string.enable);
         enable.setOnClickListener((view) -> toggleWork());
 
+        // show how the background job is getting on with a backlog
+        progress = findViewById(R.id.progress);
+        workInfos = workManager.getWorkInfosByTagLiveData("moveFiles");
+        workInfos.observeForever(workObserver);
+
         service = findViewById(R.id.service);
         service.setText(serviceEnabled ? R.string.service_disable : R.string.service_enable);
         service.setOnClickListener((view) -> toggleService());
 
+        compress = findViewById(R.id.compress);
+        compress.setChecked(sharedPrefs.getBoolean("compress", false));
+        compress.setOnCheckedChangeListener((CompoundButton b, boolean checked) -> setCompress(checked));
+
         logging = findViewById(R.id.logging);
         logging.setChecked(Log.LOG_TO_FILE);
         logging.setOnCheckedChangeListener((CompoundButton b, boolean checked) -> setLogging(checked));
@@ -138,6 +158,9 @@ public class MainActivity extends Activity {
         if (fileObserver != null) {
             fileObserver.stopWatching();
         }
+        if (workInfos != null) {
+            workInfos.removeObserver(workObserver);
+        }
         super.onDestroy();
     }
 
@@ -254,6 +277,23 @@ public class MainActivity extends Activity {
                 r);
     }
 
+    void showProgress(List<WorkInfo> infos) {
+        for (WorkInfo info: infos) {
+            if (info.getState() != WorkInfo.State.RUNNING) {
+                continue;
+            }
+            Data data = info.getProgress();
+            int remaining = data.getInt(MoveFilesWorker.PROGRESS_REMAINING, 0);
+            if (remaining > 0) {
+                long minutes = (data.getLong(MoveFilesWorker.PROGRESS_ETA, 0) + 59) / 60;
+                progress.setText(getString(R.string.progress, remaining, minutes));
+                progress.setVisibility(View.VISIBLE);
+                return;
+            }
+        }
+        progress.setVisibility(View.GONE);
+    }
+
     void stopWork() {
         Log.i(TAG, "Stop background job");
         workManager.cancelAllWork();
@@ -292,21 +332,29 @@ public class MainActivity extends Activity {
         context.startForegroundService(intent);
     }
 
-    byte[] buffer = new byte[1000000];
     @SuppressLint("SetTextI18n")
     void readLog() {
-        try {
-            InputStream is = new FileInputStream(Log.logFile);
-            int available = is.available();
+        BufferPool pool = BufferPool.getInstance();
+        ByteBuffer buffer = null;
+        boolean pooled = true;
+        try (FileChannel channel = new FileInputStream(Log.logFile).getChannel()) {
+            // this runs on the UI thread, so don't wait long for copies to finish with the pool
+            buffer = pool.tryLease(100);
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(BufferPool.BUFFER_SIZE);
+                pooled = false;
+            }
             // If the log happens to be super long, only read the last 1M of it
-            if (available > 1000000) {
-                //noinspection ResultOfMethodCallIgnored
-                is.skip(available - 1000000);
+            long size = channel.size();
+            if (size > buffer.capacity()) {
+                channel.position(size - buffer.capacity());
             }
-            int got = is.read(buffer);
-            is.close();
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // keep reading until the buffer is full or we reach the end
+            }
+            buffer.flip();
 
-            logView.setText(new String(buffer, 0, got));
+            logView.setText(StandardCharsets.UTF_8.decode(buffer));
 
             Layout layout = logView.getLayout();
             if (layout != null) {
@@ -320,11 +368,26 @@ public class MainActivity extends Activity {
                 }
             }
 
-        } catch (IOException e) {
+        } catch (IOException | InterruptedException e) {
             StringWriter sw = new StringWriter();
             PrintWriter pw = new PrintWriter(sw);
             e.printStackTrace(pw);
             logView.setText("Exception reading log!\n"+sw);
+        } finally {
+            if (buffer != null && pooled) {
+                pool.release(buffer);
+            }
+        }
+    }
+
+    void setCompress(boolean compress) {
+        Log.i(TAG, compress ? "Compressing moved files" : "Not compressing moved files");
+        SharedPreferences.Editor editor = sharedPrefs.edit();
+        editor.putBoolean("compress", compress);
+        editor.apply();
+        // the service reads the setting when it starts watching
+        if (serviceEnabled) {
+            startService(false);
         }
     }
 
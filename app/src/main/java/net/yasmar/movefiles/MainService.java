@@ -8,15 +8,12 @@ import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.FileObserver;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
 
 import java.io.File;
 
-import androidx.annotation.Nullable;
-
 public class MainService
         extends Service {
 
@@ -25,8 +22,9 @@ public class MainService
     Context context;
     NotificationManager notificationManager;
     MoveFilesImpl impl;
-    FileObserver fileObserver;
+    FolderWatcher watcher;
     boolean running = false;
+    HandlerThread moveThread;
     Handler handler;
 
     public static final String PERSISTENT_CHANNEL = "persistent.1";
@@ -48,7 +46,10 @@ public class MainService
 
         createNotificationChannels();
 
-        handler = new Handler(Looper.getMainLooper());
+        // copying (and compressing) big files shouldn't happen on the main thread
+        moveThread = new HandlerThread("moves");
+        moveThread.start();
+        handler = new Handler(moveThread.getLooper());
     }
 
     @Override
@@ -60,9 +61,10 @@ public class MainService
     public void onDestroy() {
         Log.i(TAG, "service is being destroyed");
         running = false;
-        if (fileObserver != null) {
-            fileObserver.stopWatching();
+        if (watcher != null) {
+            watcher.stopWatching();
         }
+        moveThread.quitSafely();
         super.onDestroy();
     }
 
@@ -86,11 +88,11 @@ public class MainService
         Notification notification = buildNotification();
         startForeground(1, notification);
 
-        if (fileObserver != null) {
-            fileObserver.stopWatching();
-            fileObserver = null;
+        if (watcher != null) {
+            watcher.stopWatching();
+            watcher = null;
         }
-        startFileObserver();
+        startWatcher();
         running = true;
     }
 
@@ -129,7 +131,7 @@ public class MainService
         return b.build();
     }
 
-    void startFileObserver() {
+    void startWatcher() {
         SharedPreferences sharedPrefs = context.getSharedPreferences(context.getPackageName()+"_preferences", Context.MODE_PRIVATE);
         String sourcePath = sharedPrefs.getString("sourceFolder", null);
         String destPath = sharedPrefs.getString("destFolder", null);
@@ -141,37 +143,9 @@ public class MainService
 
         File sourceFolder = new File(sourcePath);
         File destFolder = new File(destPath);
-        int mask = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.MOVE_SELF | FileObserver.CREATE;
-        fileObserver = new FileObserver(sourceFolder, mask) {
-            @Override
-            public void onEvent(int event, @Nullable String filename) {
-                moveLater(sourceFolder, destFolder, filename);
-            }
-        };
-        fileObserver.startWatching();
-    }
-
-    void moveLater(File sourceFolder, File destFolder, String filename) {
-        File sourceFile = new File(sourceFolder + "/" + filename);
-        if (filename == null || filename.startsWith(".") || !sourceFile.isFile()) {
-            return;
-        }
-        Log.i(TAG, "scheduling a move of "+filename+" in 30 seconds");
-        handler.postDelayed(() -> moveNow(sourceFolder, destFolder, filename), 30000);
-    }
-
-    void moveNow(File sourceFolder, File destFolder, String filename) {
-        File sourceFile = new File(sourceFolder + "/" + filename);
-        if (!sourceFile.isFile()) {
-            // it got removed while we were waiting?
-            return;
-        }
-        long now = System.currentTimeMillis();
-        if (sourceFile.lastModified() + 30000 > now) {
-            // too new... try later
-            moveLater(sourceFolder, destFolder, filename);
-            return;
-        }
-        impl.moveFile(sourceFolder, destFolder, filename);
+        impl.compress = sharedPrefs.getBoolean("compress", false);
+        MoveScheduler scheduler = new MoveScheduler(impl, handler::postDelayed, sourceFolder, destFolder);
+        watcher = new FileObserverWatcher(sourceFolder, scheduler::moveLater);
+        watcher.startWatching();
     }
 }
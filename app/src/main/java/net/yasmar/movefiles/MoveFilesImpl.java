@@ -4,14 +4,22 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
 
 public class MoveFilesImpl {
 
     private static final String TAG = "MoveFilesImpl";
 
-    private MoveFilesImpl() {
+    // The app shares one instance, the daemon has one per rule
+    MoveFilesImpl() {
     }
 
     private static MoveFilesImpl instance;
@@ -22,35 +30,127 @@ public class MoveFilesImpl {
         return instance;
     }
 
+    // When set, files are gzipped on their way to the destination folder.
+    // Deflating happens in the same stream as the copy, so memory use per
+    // file is just the copy buffer plus the deflater's fixed-size window.
+    boolean compress = false;
+
+    // Files that are already compressed don't get any smaller, so don't waste time on them
+    static final String[] COMPRESSED_SUFFIXES = {
+            ".gz", ".zip", ".7z", ".xz", ".bz2", ".zst",
+            ".jpg", ".jpeg", ".png", ".webp", ".heic", ".gif",
+            ".mp4", ".mkv", ".webm", ".mp3", ".m4a", ".ogg", ".opus", ".apk",
+    };
+
+    static boolean shouldCompress(String filename) {
+        String lower = filename.toLowerCase(Locale.ROOT);
+        for (String suffix: COMPRESSED_SUFFIXES) {
+            if (lower.endsWith(suffix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Files are only moved once they've been left alone this long (in milliseconds)
+    long settleTime = 30000;
+
+    interface MoveListener {
+        void moved(String filename, long bytes);
+    }
+
+    // Told about every successful move (used by the load test)
+    MoveListener listener;
+
+    final AtomicLong filesMoved = new AtomicLong();
+    final AtomicLong bytesMoved = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+
+    // When compressing, foo is stored as foo.gz and foo.gz is copied as-is.
+    // Returns the other source file that ends up with the same name, if it exists.
+    File clashingSource(File sourceFile, boolean gzip) {
+        if (!compress) {
+            return null;
+        }
+        String filename = sourceFile.getName();
+        File other;
+        if (gzip) {
+            other = new File(sourceFile.getParentFile(), filename + ".gz");
+        } else if (filename.endsWith(".gz") && shouldCompress(filename.substring(0, filename.length() - 3))) {
+            other = new File(sourceFile.getParentFile(), filename.substring(0, filename.length() - 3));
+        } else {
+            return null;
+        }
+        return other.isFile() ? other : null;
+    }
+
     void moveFiles(File sourceFolder, File destFolder) {
         filesForFolder(sourceFolder, (filename) -> moveFile(sourceFolder, destFolder, filename));
     }
 
-    byte[] buffer = new byte[1000000];
-    synchronized void moveFile(File sourceFolder, File destFolder, String filename) {
+    // Files currently being moved. The background job and the foreground service
+    // can both try to move the same file, but only the first one should.
+    final Set<File> moving = new HashSet<>();
+
+    // Returns true if the file was moved
+    boolean moveFile(File sourceFolder, File destFolder, String filename) {
         File sourceFile = new File(sourceFolder + "/" + filename);
+        synchronized (moving) {
+            if (!moving.add(sourceFile)) {
+                return false;
+            }
+        }
+        try {
+            return moveFileNow(sourceFile, destFolder, filename);
+        } finally {
+            synchronized (moving) {
+                moving.remove(sourceFile);
+            }
+        }
+    }
+
+    boolean moveFileNow(File sourceFile, File destFolder, String filename) {
         if (!sourceFile.isFile() || filename.startsWith(".")) {
-            return;
+            return false;
         }
         long now = System.currentTimeMillis();
-        if (sourceFile.lastModified() + 30000 > now) {
-            // don't move files that were touched less than 30 seconds ago
-            Log.i(TAG, "skipping "+sourceFile + " because it was modified less than 30 seconds ago");
-            return;
+        if (sourceFile.lastModified() + settleTime > now) {
+            // don't move files that were touched recently (they might still be being written)
+            Log.i(TAG, "skipping "+sourceFile + " because it was modified less than "+(settleTime/1000)+" seconds ago");
+            return false;
+        }
+        boolean gzip = compress && shouldCompress(filename);
+        File destFile = new File(destFolder + "/" + filename + (gzip ? ".gz" : ""));
+        File clash = clashingSource(sourceFile, gzip);
+        if (clash != null) {
+            // foo and foo.gz both end up as foo.gz, so don't let one replace the other
+            Log.w(TAG, "not moving "+sourceFile+" because "+clash+" would be moved to the same place");
+            failures.incrementAndGet();
+            return false;
+        }
+        ByteBuffer buffer;
+        try {
+            buffer = BufferPool.getInstance().lease();
+        } catch (InterruptedException e) {
+            // we're being shut down
+            Thread.currentThread().interrupt();
+            return false;
         }
-        File destFile = new File(destFolder + "/" + filename);
         Log.i(TAG, "move from "+sourceFile+" to "+destFile);
         try {
-            InputStream is = new FileInputStream(sourceFile);
-            int available = is.available();
-            OutputStream os = new FileOutputStream(destFile);
-            while (available > 0) {
-                int got = is.read(buffer);
-                os.write(buffer, 0, got);
-                available -= got;
+            long length = sourceFile.length();
+            try (FileChannel in = new FileInputStream(sourceFile).getChannel();
+                 WritableByteChannel out = gzip
+                         ? Channels.newChannel(new GZIPOutputStream(new FileOutputStream(destFile), 65536))
+                         : new FileOutputStream(destFile).getChannel()) {
+                while (in.read(buffer) > 0) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
             }
-            is.close();
-            os.close();
 
             // hopefully the above throws an exception so we don't remove
             // the original file if we have failed to write the copy!
@@ -58,11 +158,21 @@ public class MoveFilesImpl {
             if (!did) {
                 Log.w(TAG, "Failed to remove source file?!");
             }
+            filesMoved.incrementAndGet();
+            bytesMoved.addAndGet(length);
+            if (listener != null) {
+                listener.moved(filename, length);
+            }
+            return true;
         } catch (IOException e) {
             Log.w(TAG, "Failed to move the file?!", e);
+            failures.incrementAndGet();
             // try to remove the partially-written destination file, but don't worry if we fail
             //noinspection ResultOfMethodCallIgnored
             destFile.delete();
+            return false;
+        } finally {
+            BufferPool.getInstance().release(buffer);
         }
     }
 
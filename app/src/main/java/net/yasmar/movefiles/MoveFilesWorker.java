@@ -6,8 +6,15 @@ import android.content.SharedPreferences;
 import android.os.Environment;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
@@ -16,6 +23,18 @@ public class MoveFilesWorker
 
     private static final String TAG = "MoveFilesWorker";
 
+    // WorkManager stops workers after 10 minutes, so leave some slack
+    static final long BUDGET = 8 * 60 * 1000;
+
+    // Pause between runs working through a backlog
+    static final long FOLLOW_UP_DELAY = 60 * 1000;
+
+    // Progress data keys
+    public static final String PROGRESS_MOVED = "moved";
+    public static final String PROGRESS_REMAINING = "remaining";
+    public static final String PROGRESS_ETA = "etaSeconds";
+    static final long PROGRESS_INTERVAL = 1000;
+
     Context context;
     MoveFilesImpl impl;
 
@@ -50,7 +69,8 @@ public class MoveFilesWorker
         if (sourcePath != null && destPath != null) {
             File sourceFolder = new File(sourcePath);
             File destFolder = new File(destPath);
-            impl.moveFiles(sourceFolder, destFolder);
+            impl.compress = sharedPrefs.getBoolean("compress", false);
+            moveBacklog(sharedPrefs, sourceFolder, destFolder);
         }
 
         // work is run even when the phone is rebooted or the app is upgraded
@@ -65,4 +85,72 @@ public class MoveFilesWorker
         return Result.success();
     }
 
+    // Moves as much of the backlog as fits in this run, and queues another run for the rest
+    void moveBacklog(SharedPreferences sharedPrefs, File sourceFolder, File destFolder) {
+        String volumes = MovePlanner.volumesOf(sourceFolder, destFolder);
+        MovePlanner planner = new MovePlanner(
+                sharedPrefs.getFloat("bytesPerMs:"+volumes, (float)MovePlanner.DEFAULT_BYTES_PER_MS),
+                sharedPrefs.getFloat("msPerFile:"+volumes, (float)MovePlanner.DEFAULT_MS_PER_FILE));
+
+        List<String> filenames = new ArrayList<>();
+        impl.filesForFolder(sourceFolder, filenames::add);
+        MovePlanner.Plan plan = planner.plan(sourceFolder, filenames, BUDGET, impl.settleTime);
+        if (plan.backlogFiles == 0) {
+            return;
+        }
+        Log.i(TAG, "backlog of "+plan.backlogFiles+" files ("+plan.backlogBytes+" bytes) should take "
+                +(planner.estimate(plan.backlogFiles, plan.backlogBytes)/1000)+" seconds, moving "
+                +plan.slice.size()+" files now");
+
+        int moved = 0;
+        long lastProgress = 0;
+        int filesLeft = plan.backlogFiles;
+        long bytesLeft = plan.backlogBytes;
+        for (MovePlanner.Entry entry: plan.slice) {
+            if (isStopped()) {
+                Log.i(TAG, "stopped with "+filesLeft+" files left to move");
+                break;
+            }
+            long start = System.currentTimeMillis();
+            if (impl.moveFile(sourceFolder, destFolder, entry.filename)) {
+                planner.record(entry.length, System.currentTimeMillis() - start);
+                moved++;
+            }
+            filesLeft--;
+            bytesLeft -= entry.length;
+            // each progress update is a database write, so don't do one per tiny file
+            long now = System.currentTimeMillis();
+            if (now - lastProgress >= PROGRESS_INTERVAL) {
+                reportProgress(planner, moved, filesLeft, bytesLeft);
+                lastProgress = now;
+            }
+        }
+        reportProgress(planner, moved, filesLeft, bytesLeft);
+
+        SharedPreferences.Editor editor = sharedPrefs.edit();
+        editor.putFloat("bytesPerMs:"+volumes, (float)planner.bytesPerMs);
+        editor.putFloat("msPerFile:"+volumes, (float)planner.msPerFile);
+        editor.apply();
+
+        // don't wait 15 minutes for the next periodic run, unless nothing could be moved
+        // (eg. the destination is full), in which case another run right away won't help
+        if (plan.slice.size() < plan.backlogFiles && moved > 0 && !isStopped()) {
+            Log.i(TAG, "queueing another run for the remaining "+(plan.backlogFiles - plan.slice.size())+" files");
+            WorkManager.getInstance(context).enqueueUniqueWork(
+                    "moveFilesBacklog",
+                    ExistingWorkPolicy.APPEND_OR_REPLACE,
+                    new OneTimeWorkRequest.Builder(MoveFilesWorker.class)
+                            .setInitialDelay(FOLLOW_UP_DELAY, TimeUnit.MILLISECONDS)
+                            .addTag("moveFiles")
+                            .build());
+        }
+    }
+
+    void reportProgress(MovePlanner planner, int moved, int filesLeft, long bytesLeft) {
+        setProgressAsync(new Data.Builder()
+                .putInt(PROGRESS_MOVED, moved)
+                .putInt(PROGRESS_REMAINING, filesLeft)
+                .putLong(PROGRESS_ETA, planner.estimate(filesLeft, bytesLeft)/1000)
+                .build());
+    }
 }
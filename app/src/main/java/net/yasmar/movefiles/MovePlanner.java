@@ -0,0 +1,120 @@
+package net.yasmar.movefiles;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Estimates how long moving a backlog will take, using throughput measured on
+// previous moves, and picks a slice of it that fits in one worker run.
+//
+// The model is a fixed cost per file plus a transfer rate. Both are learned as
+// moving averages: small files tell us the per-file cost, larger files the rate.
+public class MovePlanner {
+
+    static final double DEFAULT_BYTES_PER_MS = 20 * 1024; // about 20MB/s
+    static final double DEFAULT_MS_PER_FILE = 5;
+
+    // How much each new measurement counts towards the moving averages
+    static final double WEIGHT = 0.2;
+
+    // Files up to this size are dominated by the per-file cost
+    static final long SMALL_FILE = 64 * 1024;
+
+    double bytesPerMs;
+    double msPerFile;
+
+    MovePlanner(double bytesPerMs, double msPerFile) {
+        this.bytesPerMs = bytesPerMs;
+        this.msPerFile = msPerFile;
+    }
+
+    // Throughput depends on where files are copied from and to, so it's tracked
+    // per volume. /storage/emulated/0 and /sdcard are both the primary volume.
+    static String volumeOf(File folder) {
+        String path = folder.getAbsolutePath();
+        if (path.startsWith("/sdcard") || path.startsWith("/storage/emulated/")) {
+            return "primary";
+        }
+        String[] parts = path.split("/");
+        if (parts.length > 2 && parts[1].equals("storage")) {
+            return parts[2];
+        }
+        return parts.length > 1 ? parts[1] : "/";
+    }
+
+    static String volumesOf(File sourceFolder, File destFolder) {
+        return volumeOf(sourceFolder) + ">" + volumeOf(destFolder);
+    }
+
+    // Estimated time to move some files, in milliseconds
+    long estimate(int files, long bytes) {
+        return (long)(files * msPerFile + bytes / bytesPerMs);
+    }
+
+    void record(long bytes, long ms) {
+        if (bytes <= SMALL_FILE) {
+            msPerFile += WEIGHT * (ms - msPerFile);
+        } else {
+            double rate = bytes / Math.max(ms - msPerFile, 1);
+            bytesPerMs += WEIGHT * (rate - bytesPerMs);
+        }
+    }
+
+    // A file's details, read once so sorting doesn't hit the filesystem on every
+    // comparison (and a file vanishing part way through can't upset the sort)
+    static class Entry {
+        String filename;
+        long lastModified;
+        long length;
+    }
+
+    static class Plan {
+        // the files to move now, oldest first
+        List<Entry> slice = new ArrayList<>();
+        long sliceBytes;
+        int backlogFiles;
+        long backlogBytes;
+    }
+
+    // Picks the oldest files whose estimated move time fits in budget (milliseconds).
+    // At least one file is always picked, so a huge file can't stall the backlog.
+    // Files modified within settleTime won't be moved yet, so they're left out.
+    Plan plan(File sourceFolder, List<String> filenames, long budget, long settleTime) {
+        long now = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<>();
+        for (String filename: filenames) {
+            if (filename.startsWith(".")) {
+                continue;
+            }
+            File file = new File(sourceFolder + "/" + filename);
+            Entry entry = new Entry();
+            entry.filename = filename;
+            // lastModified is 0 if the file has gone (eg. the service just moved it)
+            entry.lastModified = file.lastModified();
+            entry.length = file.length();
+            if (entry.lastModified != 0 && entry.lastModified + settleTime <= now && file.isFile()) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparingLong(e -> e.lastModified));
+
+        Plan plan = new Plan();
+        boolean full = false;
+        for (Entry entry: entries) {
+            plan.backlogFiles++;
+            plan.backlogBytes += entry.length;
+            if (full) {
+                continue;
+            }
+            if (!plan.slice.isEmpty() && estimate(plan.slice.size() + 1, plan.sliceBytes + entry.length) > budget) {
+                // keep things in order rather than squeezing smaller files in
+                full = true;
+                continue;
+            }
+            plan.slice.add(entry);
+            plan.sliceBytes += entry.length;
+        }
+        return plan;
+    }
+}
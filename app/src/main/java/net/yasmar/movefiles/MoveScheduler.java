@@ -0,0 +1,67 @@
+package net.yasmar.movefiles;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+// Turns folder watcher events into delayed moves.
+// Files are only moved once they've been left alone for a while (MoveFilesImpl.settleTime).
+public class MoveScheduler {
+
+    private static final String TAG = "MoveScheduler";
+
+    // Handler::postDelayed on Android, a ScheduledExecutorService elsewhere
+    interface Delayer {
+        void postDelayed(Runnable r, long delayMillis);
+    }
+
+    MoveFilesImpl impl;
+    Delayer delayer;
+    File sourceFolder;
+    File destFolder;
+
+    // A file being written generates lots of events, but it only needs one pending move
+    final Set<String> pending = new HashSet<>();
+
+    MoveScheduler(MoveFilesImpl impl, Delayer delayer, File sourceFolder, File destFolder) {
+        this.impl = impl;
+        this.delayer = delayer;
+        this.sourceFolder = sourceFolder;
+        this.destFolder = destFolder;
+    }
+
+    void moveLater(String filename) {
+        if (filename == null || filename.startsWith(".")) {
+            return;
+        }
+        File sourceFile = new File(sourceFolder + "/" + filename);
+        if (!sourceFile.isFile()) {
+            return;
+        }
+        synchronized (pending) {
+            if (!pending.add(filename)) {
+                return;
+            }
+        }
+        Log.i(TAG, "scheduling a move of "+filename+" in "+(impl.settleTime/1000)+" seconds");
+        delayer.postDelayed(() -> moveNow(filename), impl.settleTime);
+    }
+
+    void moveNow(String filename) {
+        synchronized (pending) {
+            pending.remove(filename);
+        }
+        File sourceFile = new File(sourceFolder + "/" + filename);
+        if (!sourceFile.isFile()) {
+            // it got removed while we were waiting?
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (sourceFile.lastModified() + impl.settleTime > now) {
+            // too new... try later
+            moveLater(filename);
+            return;
+        }
+        impl.moveFile(sourceFolder, destFolder, filename);
+    }
+}
@@ -0,0 +1,96 @@
+package net.yasmar.movefiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+// A java.nio backend for FolderWatcher. Events are delivered on a background thread,
+// the same as FileObserver does.
+public class WatchServiceWatcher
+        implements FolderWatcher {
+
+    private static final String TAG = "WatchServiceWatcher";
+
+    File folder;
+    Callback callback;
+    WatchService watchService;
+    Thread thread;
+
+    WatchServiceWatcher(File folder, Callback callback) {
+        this.folder = folder;
+        this.callback = callback;
+    }
+
+    @Override
+    public synchronized void startWatching() {
+        if (watchService != null) {
+            return;
+        }
+        try {
+            watchService = folder.toPath().getFileSystem().newWatchService();
+            folder.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to watch "+folder, e);
+            stopWatching();
+            return;
+        }
+        WatchService ws = watchService;
+        thread = new Thread(() -> run(ws), TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stopWatching() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to stop watching "+folder, e);
+            }
+            watchService = null;
+        }
+        thread = null;
+    }
+
+    void run(WatchService ws) {
+        try {
+            while (true) {
+                WatchKey key = ws.take();
+                for (WatchEvent<?> event: key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // events were dropped, so report everything that's in the folder
+                        Log.w(TAG, "Lost events watching "+folder+", rescanning");
+                        rescan();
+                        continue;
+                    }
+                    Path path = (Path)event.context();
+                    callback.onEvent(path.toString());
+                }
+                if (!key.reset()) {
+                    Log.w(TAG, "Can't watch "+folder+" anymore?!");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopWatching() was called
+        }
+    }
+
+    void rescan() {
+        String[] list = folder.list();
+        if (list == null) {
+            return;
+        }
+        for (String filename: list) {
+            callback.onEvent(filename);
+        }
+    }
+}
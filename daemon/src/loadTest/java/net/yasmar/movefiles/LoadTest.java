@@ -0,0 +1,263 @@
+package net.yasmar.movefiles;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drives the live-move path (watcher -> MoveScheduler -> MoveFilesImpl) with
+// synthetic writers on a plain JVM and reports how it copes.
+// Usage: LoadTest [key=value...]
+//
+//   tinyFiles=1000 tinySize=1024         lots of small files written back to back
+//   slowWriters=8 slowChunks=10 slowInterval=200
+//                                        files written a chunk at a time with pauses (ms)
+//   largeFiles=2 largeSize=67108864      big files written in chunks
+//   chunkSize=1048576                    chunk size for slow and large files
+//   settleTime=30000                     how long files must be left alone before moving (ms)
+//   threads=1                            move threads (1 behaves like the service's Handler)
+//   compress=false
+//   timeout=600                          give up after this many seconds
+//   maxP95=                              fail if the 95th percentile write-to-move latency
+//                                        exceeds this many ms (for CI)
+//
+// Exits with a non-zero status if files were left behind or maxP95 was exceeded.
+public class LoadTest {
+
+    private static final String TAG = "LoadTest";
+
+    Properties config;
+    File sourceFolder;
+    File destFolder;
+    MoveFilesImpl impl;
+    FolderWatcher watcher;
+    ScheduledExecutorService executor;
+    ExecutorService producers;
+    ScheduledExecutorService monitor;
+
+    // nanoTime of the first event for each file, and of when its writer closed it
+    final Map<String, Long> firstEvent = new ConcurrentHashMap<>();
+    final Map<String, Long> written = new ConcurrentHashMap<>();
+    final List<Long> eventLatencies = Collections.synchronizedList(new ArrayList<>());
+    final List<Long> writeLatencies = Collections.synchronizedList(new ArrayList<>());
+    final AtomicLong lastMove = new AtomicLong();
+    final AtomicLong peakHeap = new AtomicLong();
+    final AtomicLong peakDirect = new AtomicLong();
+    CountDownLatch remaining;
+
+    LoadTest(Properties config) {
+        this.config = config;
+    }
+
+    int intSetting(String key, int def) {
+        return Integer.parseInt(config.getProperty(key, Integer.toString(def)));
+    }
+
+    long longSetting(String key, long def) {
+        return Long.parseLong(config.getProperty(key, Long.toString(def)));
+    }
+
+    boolean run() throws IOException, InterruptedException {
+        int tinyFiles = intSetting("tinyFiles", 1000);
+        int tinySize = intSetting("tinySize", 1024);
+        int slowWriters = intSetting("slowWriters", 8);
+        int slowChunks = intSetting("slowChunks", 10);
+        long slowInterval = longSetting("slowInterval", 200);
+        int largeFiles = intSetting("largeFiles", 2);
+        long largeSize = longSetting("largeSize", 64 * 1024 * 1024);
+        int chunkSize = intSetting("chunkSize", 1024 * 1024);
+        long timeout = longSetting("timeout", 600);
+
+        sourceFolder = Files.createTempDirectory("movefiles-source").toFile();
+        destFolder = Files.createTempDirectory("movefiles-dest").toFile();
+        impl = new MoveFilesImpl();
+        impl.settleTime = longSetting("settleTime", impl.settleTime);
+        impl.compress = Boolean.parseBoolean(config.getProperty("compress", "false"));
+        impl.listener = this::moved;
+        executor = Executors.newScheduledThreadPool(intSetting("threads", 1));
+        producers = Executors.newCachedThreadPool();
+        monitor = Executors.newSingleThreadScheduledExecutor();
+        remaining = new CountDownLatch(tinyFiles + slowWriters + largeFiles);
+
+        MoveScheduler scheduler = new MoveScheduler(impl,
+                (r, delay) -> executor.schedule(r, delay, TimeUnit.MILLISECONDS),
+                sourceFolder, destFolder);
+        watcher = new WatchServiceWatcher(sourceFolder, (filename) -> {
+            if (filename != null) {
+                firstEvent.putIfAbsent(filename, System.nanoTime());
+            }
+            scheduler.moveLater(filename);
+        });
+        watcher.startWatching();
+        monitor.scheduleAtFixedRate(this::sampleMemory, 0, 100, TimeUnit.MILLISECONDS);
+
+        Log.i(TAG, "writing " + tinyFiles + " tiny, " + slowWriters + " slow and " + largeFiles + " large files to " + sourceFolder);
+        long start = System.nanoTime();
+        producers.submit(() -> {
+            for (int i = 0; i < tinyFiles; i++) {
+                write("tiny-" + i, tinySize, tinySize, 0);
+            }
+        });
+        for (int i = 0; i < slowWriters; i++) {
+            String filename = "slow-" + i;
+            producers.submit(() -> write(filename, (long)slowChunks * chunkSize, chunkSize, slowInterval));
+        }
+        for (int i = 0; i < largeFiles; i++) {
+            String filename = "large-" + i;
+            producers.submit(() -> write(filename, largeSize, chunkSize, 0));
+        }
+
+        boolean finished = remaining.await(timeout, TimeUnit.SECONDS);
+        watcher.stopWatching();
+        producers.shutdownNow();
+        executor.shutdownNow();
+        monitor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        sampleMemory();
+
+        boolean ok = report(start, finished);
+        deleteFolder(sourceFolder);
+        deleteFolder(destFolder);
+        return ok;
+    }
+
+    void write(String filename, long size, int chunkSize, long interval) {
+        byte[] chunk = new byte[chunkSize];
+        // log-like text, so compress=true has something to do
+        byte[] line = (filename + " the quick brown fox jumps over the lazy dog\n").getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = line[i % line.length];
+        }
+        File file = new File(sourceFolder, filename);
+        try (OutputStream os = new FileOutputStream(file)) {
+            for (long left = size; left > 0; left -= chunk.length) {
+                os.write(chunk, 0, (int)Math.min(left, chunk.length));
+                if (interval > 0) {
+                    Thread.sleep(interval);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file, e);
+        } catch (InterruptedException e) {
+            return;
+        }
+        written.put(filename, System.nanoTime());
+    }
+
+    void moved(String filename, long bytes) {
+        long now = System.nanoTime();
+        Long event = firstEvent.get(filename);
+        if (event != null) {
+            eventLatencies.add(now - event);
+        }
+        Long closed = written.get(filename);
+        if (closed != null) {
+            writeLatencies.add(now - closed);
+        }
+        lastMove.set(now);
+        remaining.countDown();
+    }
+
+    void sampleMemory() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        for (BufferPoolMXBean pool: ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                peakDirect.accumulateAndGet(pool.getMemoryUsed(), Math::max);
+            }
+        }
+    }
+
+    // nearest-rank percentile of a sorted list, in milliseconds
+    static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int rank = (int)Math.ceil(p / 100 * sorted.size());
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(rank, 1) - 1));
+    }
+
+    static String percentiles(List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return String.format(Locale.ROOT, "p50 %d ms, p90 %d ms, p95 %d ms, p99 %d ms, max %d ms",
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 95),
+                percentile(sorted, 99), percentile(sorted, 100));
+    }
+
+    boolean report(long start, boolean finished) {
+        boolean ok = finished;
+        long files = impl.filesMoved.get();
+        long bytes = impl.bytesMoved.get();
+        double seconds = (lastMove.get() - start) / 1e9;
+        System.out.println("moved " + files + " files (" + bytes + " bytes), " + impl.failures.get() + " failures");
+        if (!finished) {
+            System.out.println("FAILED: " + remaining.getCount() + " files were not moved in time");
+        }
+        if (files > 0) {
+            System.out.printf(Locale.ROOT, "throughput: %.1f files/s, %.1f MB/s%n",
+                    files / seconds, bytes / seconds / (1024 * 1024));
+        }
+        System.out.println("event-to-move latency: " + percentiles(eventLatencies));
+        System.out.println("write-to-move latency: " + percentiles(writeLatencies));
+        System.out.printf(Locale.ROOT, "peak memory: heap %.1f MB, direct %.1f MB%n",
+                peakHeap.get() / (1024.0 * 1024), peakDirect.get() / (1024.0 * 1024));
+
+        String maxP95 = config.getProperty("maxP95");
+        if (maxP95 != null) {
+            List<Long> sorted = new ArrayList<>(writeLatencies);
+            Collections.sort(sorted);
+            long p95 = percentile(sorted, 95);
+            if (p95 > Long.parseLong(maxP95)) {
+                System.out.println("FAILED: p95 write-to-move latency " + p95 + " ms exceeds " + maxP95 + " ms");
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file: files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        folder.delete();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Properties config = new Properties();
+        for (String arg: args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                System.err.println("usage: LoadTest [key=value...]");
+                System.exit(2);
+            }
+            config.setProperty(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        Log.QUIET = true;
+        boolean ok = new LoadTest(config).run();
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,183 @@
+package net.yasmar.movefiles;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Runs the move engine headless on a Linux host (eg. a NAS).
+// Usage: MoveFilesDaemon <config.properties>
+//
+// The config file contains one or more rules, plus some optional settings:
+//   logs.source=/srv/drop/logs
+//   logs.dest=/srv/archive/logs
+//   logs.compress=true
+//   threads=4
+//   sweepInterval=900
+//   statsInterval=60
+//   statsFile=/run/movefiles.stats
+//
+// Setting sweepInterval or statsInterval to 0 turns off sweeping or stats reporting.
+//
+// Each rule behaves like the app with both the background job and the foreground
+// service enabled: the folder is watched for changes, and swept periodically to
+// pick up anything the watcher missed.
+public class MoveFilesDaemon {
+
+    private static final String TAG = "MoveFilesDaemon";
+
+    static class Rule {
+        String name;
+        File sourceFolder;
+        File destFolder;
+        MoveFilesImpl impl;
+        FolderWatcher watcher;
+    }
+
+    List<Rule> rules = new ArrayList<>();
+    ScheduledThreadPoolExecutor executor;
+    long sweepInterval;
+    long statsInterval;
+    File statsFile;
+
+    MoveFilesDaemon(Properties config) {
+        for (String key: config.stringPropertyNames()) {
+            if (!key.endsWith(".source")) {
+                continue;
+            }
+            Rule rule = new Rule();
+            rule.name = key.substring(0, key.length() - ".source".length());
+            String destPath = config.getProperty(rule.name + ".dest");
+            if (destPath == null) {
+                throw new IllegalArgumentException("rule " + rule.name + " has no destination folder");
+            }
+            rule.sourceFolder = new File(config.getProperty(key));
+            rule.destFolder = new File(destPath);
+            if (!rule.sourceFolder.isDirectory() || !rule.destFolder.isDirectory()) {
+                throw new IllegalArgumentException("rule " + rule.name + " needs existing source and destination folders");
+            }
+            // each rule has its own settings, so it needs its own instance
+            rule.impl = new MoveFilesImpl();
+            rule.impl.compress = Boolean.parseBoolean(config.getProperty(rule.name + ".compress", "false"));
+            rules.add(rule);
+        }
+        if (rules.isEmpty()) {
+            throw new IllegalArgumentException("no rules configured");
+        }
+
+        int threads = Integer.parseInt(config.getProperty("threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        executor = new ScheduledThreadPoolExecutor(threads);
+        // on shutdown, let running moves finish but drop the ones waiting for files to settle
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        sweepInterval = Long.parseLong(config.getProperty("sweepInterval", "900"));
+        statsInterval = Long.parseLong(config.getProperty("statsInterval", "60"));
+        String statsPath = config.getProperty("statsFile");
+        statsFile = statsPath == null ? null : new File(statsPath);
+    }
+
+    void start() {
+        for (Rule rule: rules) {
+            Log.i(TAG, "rule " + rule.name + " moves from " + rule.sourceFolder + " to " + rule.destFolder);
+            MoveScheduler scheduler = new MoveScheduler(rule.impl,
+                    (r, delay) -> executor.schedule(r, delay, TimeUnit.MILLISECONDS),
+                    rule.sourceFolder, rule.destFolder);
+            rule.watcher = new WatchServiceWatcher(rule.sourceFolder, scheduler::moveLater);
+            rule.watcher.startWatching();
+            if (sweepInterval > 0) {
+                executor.scheduleWithFixedDelay(() -> sweep(rule), 0, sweepInterval, TimeUnit.SECONDS);
+            }
+        }
+        if (statsInterval > 0) {
+            executor.scheduleWithFixedDelay(this::reportStats, statsInterval, statsInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    void stop() {
+        Log.i(TAG, "stopping");
+        for (Rule rule: rules) {
+            if (rule.watcher != null) {
+                rule.watcher.stopWatching();
+            }
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // interrupting a copy throws it away, so this is the last resort
+                Log.w(TAG, "moves are taking too long, interrupting them");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            // we're exiting anyway
+        }
+        reportStats();
+    }
+
+    void sweep(Rule rule) {
+        try {
+            // stop early if we're shutting down, rather than holding up the exit
+            rule.impl.filesForFolder(rule.sourceFolder, (filename) -> {
+                if (!executor.isShutdown()) {
+                    rule.impl.moveFile(rule.sourceFolder, rule.destFolder, filename);
+                }
+            });
+        } catch (RuntimeException e) {
+            // an exception would cancel future sweeps
+            Log.w(TAG, "Failed to sweep " + rule.sourceFolder, e);
+        }
+    }
+
+    Properties stats() {
+        Properties stats = new Properties();
+        for (Rule rule: rules) {
+            stats.setProperty(rule.name + ".filesMoved", Long.toString(rule.impl.filesMoved.get()));
+            stats.setProperty(rule.name + ".bytesMoved", Long.toString(rule.impl.bytesMoved.get()));
+            stats.setProperty(rule.name + ".failures", Long.toString(rule.impl.failures.get()));
+        }
+        return stats;
+    }
+
+    void reportStats() {
+        Properties stats = stats();
+        for (Rule rule: rules) {
+            Log.i(TAG, "rule " + rule.name
+                    + ": moved " + stats.getProperty(rule.name + ".filesMoved") + " files"
+                    + ", " + stats.getProperty(rule.name + ".bytesMoved") + " bytes"
+                    + ", " + stats.getProperty(rule.name + ".failures") + " failures");
+        }
+        if (statsFile != null) {
+            // write a new file and rename it so readers never see a partial file
+            File tmp = new File(statsFile + ".tmp");
+            try (OutputStream os = new FileOutputStream(tmp)) {
+                stats.store(os, "MoveFiles stats");
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write " + statsFile, e);
+                return;
+            }
+            if (!tmp.renameTo(statsFile)) {
+                Log.w(TAG, "Failed to replace " + statsFile);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: MoveFilesDaemon <config.properties>");
+            System.exit(2);
+        }
+        Properties config = new Properties();
+        try (InputStream is = new FileInputStream(args[0])) {
+            config.load(is);
+        }
+        MoveFilesDaemon daemon = new MoveFilesDaemon(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop));
+        daemon.start();
+    }
+}